@@ -2,9 +2,23 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class TerminalEmulator {
     private VirtualFileSystem vfs;
@@ -13,23 +27,40 @@ public class TerminalEmulator {
     private JTextField inputField;
     private final String username = System.getProperty("user.name");
     private final String hostname;
-    private String vfsPath;
+    private List<String> vfsPaths;
     private String scriptPath;
     private boolean scriptMode = false;
+    private boolean compress;
+    private boolean lazy;
 
-    public TerminalEmulator(String vfsPath, String scriptPath) throws Exception {
+    public TerminalEmulator(List<String> vfsPaths, String scriptPath, boolean compress, boolean lazy) throws Exception {
         this.hostname = java.net.InetAddress.getLocalHost().getHostName();
-        this.vfsPath = vfsPath;
+        this.vfsPaths = vfsPaths;
         this.scriptPath = scriptPath;
+        this.compress = compress;
+        this.lazy = lazy;
         initializeGUI();
         printDebugInfo();
-        if (vfsPath != null && !vfsPath.isEmpty()) {
-            try {
-                vfs = new VirtualFileSystem();
-                vfs.loadFromCSV(vfsPath);
-                outputArea.append("VFS loaded successfully from: " + vfsPath + "\n");
-            } catch (Exception e) {
-                outputArea.append("Error loading VFS: " + e.getMessage() + "\n");
+        if (!vfsPaths.isEmpty()) {
+            vfs = new VirtualFileSystem(compress, lazy);
+            // Сначала образы корня, затем монтирования поверх них
+            for (String vfsPath : vfsPaths) {
+                if (splitVfsSpec(vfsPath)[1] != null) continue;
+                try {
+                    vfs.loadFromCSV(vfsPath);
+                    outputArea.append("VFS loaded successfully from: " + vfsPath + "\n");
+                } catch (Exception e) {
+                    outputArea.append("Error loading VFS: " + e.getMessage() + "\n");
+                }
+            }
+            for (String vfsPath : vfsPaths) {
+                String[] spec = splitVfsSpec(vfsPath);
+                if (spec[1] == null) continue;
+                try {
+                    startMount(spec[0], spec[1]);
+                } catch (Exception e) {
+                    outputArea.append("Error mounting " + spec[0] + ": " + e.getMessage() + "\n");
+                }
             }
         }
         if (scriptPath != null && !scriptPath.isEmpty()) {
@@ -67,8 +98,10 @@ public class TerminalEmulator {
 
     private void printDebugInfo() {
         outputArea.append("=== Debug Information ===\n");
-        outputArea.append("VFS Path: " + (vfsPath != null ? vfsPath : "not specified") + "\n");
+        outputArea.append("VFS Path: " + (!vfsPaths.isEmpty() ? String.join(", ", vfsPaths) : "not specified") + "\n");
         outputArea.append("Script Path: " + (scriptPath != null ? scriptPath : "not specified") + "\n");
+        outputArea.append("Content compression: " + (compress ? "on" : "off") + "\n");
+        outputArea.append("Lazy content loading: " + (lazy ? "on" : "off") + "\n");
         outputArea.append("Username: " + username + "\n");
         outputArea.append("Hostname: " + hostname + "\n");
         outputArea.append("=========================\n\n");
@@ -185,12 +218,11 @@ public class TerminalEmulator {
                             return false;
                         }
 
-                        String content = vfs.readFileContent(filename);
-                        if (content == null) {
+                        String result = vfs.readFileTail(filename, lineCount);
+                        if (result == null) {
                             outputArea.append("tail: cannot open '" + filename + "': No such file\n");
                             return false;
                         }
-                        String result = tail(content, lineCount);
                         outputArea.append(result);
                         if (!result.endsWith("\n") && !result.isEmpty()) {
                             outputArea.append("\n");
@@ -216,6 +248,20 @@ public class TerminalEmulator {
                             return true;
                         }
                     }
+                case "mount":
+                    return mount(args);
+                case "umount":
+                    return umount(args);
+                case "import":
+                    return importFiles(args);
+                case "export":
+                    return exportFiles(args);
+                case "du":
+                    return du(args);
+                case "tree":
+                    return tree(args);
+                case "stat":
+                    return stat(args);
                 case "exit":
                     outputArea.append("exit command in script - ignoring\n");
                     return true;
@@ -315,11 +361,10 @@ public class TerminalEmulator {
                             break;
                         }
 
-                        String content = vfs.readFileContent(filename);
-                        if (content == null) {
+                        String result = vfs.readFileTail(filename, lineCount);
+                        if (result == null) {
                             outputArea.append("tail: cannot open '" + filename + "': No such file\n");
                         } else {
-                            String result = tail(content, lineCount);
                             outputArea.append(result);
                             if (!result.endsWith("\n") && !result.isEmpty()) {
                                 outputArea.append("\n");
@@ -343,6 +388,27 @@ public class TerminalEmulator {
                         }
                     }
                     break;
+                case "mount":
+                    mount(args);
+                    break;
+                case "umount":
+                    umount(args);
+                    break;
+                case "import":
+                    importFiles(args);
+                    break;
+                case "export":
+                    exportFiles(args);
+                    break;
+                case "du":
+                    du(args);
+                    break;
+                case "tree":
+                    tree(args);
+                    break;
+                case "stat":
+                    stat(args);
+                    break;
                 case "exit":
                     System.exit(0);
                     break;
@@ -356,6 +422,193 @@ public class TerminalEmulator {
         outputArea.setCaretPosition(outputArea.getDocument().getLength());
     }
 
+    // Фоновая загрузка образа при старте; к дереву он подключается в потоке Swing
+    private void startMount(String image, String mountPoint) throws Exception {
+        Mount mount = vfs.mount(image, mountPoint, true);
+        outputArea.append("Mounting " + image + " on " + mount.mountPoint + "\n");
+        mount.loading.whenComplete((root, error) -> SwingUtilities.invokeLater(() -> {
+            if (mount.attached != null || mount.loading == null) return;
+            try {
+                vfs.attach(mount);
+                outputArea.append("Mounted " + image + " on " + mount.mountPoint + "\n");
+            } catch (Exception e) {
+                outputArea.append("Error mounting " + image + ": " + e.getMessage() + "\n");
+            }
+        }));
+    }
+
+    // mount [<image> <path>]; образ загружается при первом входе в точку монтирования
+    private boolean mount(List<String> args) {
+        if (args.size() == 1) {
+            if (vfs != null) {
+                for (Mount mount : vfs.getMounts()) {
+                    outputArea.append(mount.image + " on " + mount.mountPoint + " (" + mount.getState() + ")\n");
+                }
+            }
+            return true;
+        } else if (args.size() != 3) {
+            outputArea.append("mount: usage: mount <image> <path>\n");
+            return false;
+        }
+        if (vfs == null) {
+            vfs = new VirtualFileSystem(compress, lazy);
+        }
+        try {
+            vfs.mount(args.get(1), args.get(2), false);
+            return true;
+        } catch (Exception e) {
+            outputArea.append("mount: " + e.getMessage() + "\n");
+            return false;
+        }
+    }
+
+    private boolean umount(List<String> args) {
+        if (vfs == null) {
+            outputArea.append("VFS not loaded\n");
+            return true;
+        } else if (args.size() < 2) {
+            outputArea.append("umount: missing argument\n");
+            return false;
+        }
+        try {
+            vfs.umount(args.get(1));
+            return true;
+        } catch (Exception e) {
+            outputArea.append("umount: " + e.getMessage() + "\n");
+            return false;
+        }
+    }
+
+    // import [-r] <hostpath> <vfspath>
+    private boolean importFiles(List<String> args) {
+        List<String> operands = new ArrayList<>(args.subList(1, args.size()));
+        boolean recursive = operands.remove("-r");
+        if (operands.size() != 2) {
+            outputArea.append("import: usage: import [-r] <hostpath> <vfspath>\n");
+            return false;
+        }
+        if (vfs == null) {
+            vfs = new VirtualFileSystem(compress, lazy);
+        }
+        try {
+            List<String> skipped = new ArrayList<>();
+            int count = vfs.importFromHost(operands.get(0), operands.get(1), recursive, skipped);
+            for (String message : skipped) {
+                outputArea.append("import: " + message + "\n");
+            }
+            outputArea.append("Imported " + count + " file(s)\n");
+            return true;
+        } catch (Exception e) {
+            outputArea.append("import: " + e.getMessage() + "\n");
+            return false;
+        }
+    }
+
+    // export [-r] <vfspath> <hostpath>
+    private boolean exportFiles(List<String> args) {
+        List<String> operands = new ArrayList<>(args.subList(1, args.size()));
+        boolean recursive = operands.remove("-r");
+        if (vfs == null) {
+            outputArea.append("VFS not loaded\n");
+            return true;
+        } else if (operands.size() != 2) {
+            outputArea.append("export: usage: export [-r] <vfspath> <hostpath>\n");
+            return false;
+        }
+        try {
+            int count = vfs.exportToHost(operands.get(0), operands.get(1), recursive);
+            outputArea.append("Exported " + count + " file(s)\n");
+            return true;
+        } catch (Exception e) {
+            outputArea.append("export: " + e.getMessage() + "\n");
+            return false;
+        }
+    }
+
+    // du [-s] [path]
+    private boolean du(List<String> args) {
+        if (vfs == null) {
+            outputArea.append("VFS not loaded\n");
+            return true;
+        }
+        boolean summarize = false;
+        String path = null;
+        for (String arg : args.subList(1, args.size())) {
+            if (arg.equals("-s")) {
+                summarize = true;
+            } else if (path == null) {
+                path = arg;
+            } else {
+                outputArea.append("du: invalid arguments\n");
+                return false;
+            }
+        }
+        List<String> lines = vfs.diskUsage(path, summarize);
+        if (lines == null) {
+            outputArea.append("du: cannot access '" + path + "': No such file or directory\n");
+            return false;
+        }
+        printLines(lines);
+        return true;
+    }
+
+    // tree [-L N] [path]
+    private boolean tree(List<String> args) {
+        if (vfs == null) {
+            outputArea.append("VFS not loaded\n");
+            return true;
+        }
+        int depth = Integer.MAX_VALUE;
+        String path = null;
+        for (int i = 1; i < args.size(); i++) {
+            if (args.get(i).equals("-L") && i + 1 < args.size()) {
+                try {
+                    depth = Integer.parseInt(args.get(++i));
+                } catch (NumberFormatException e) {
+                    depth = 0;
+                }
+                if (depth <= 0) {
+                    outputArea.append("tree: invalid level, must be greater than 0: " + args.get(i) + "\n");
+                    return false;
+                }
+            } else if (path == null) {
+                path = args.get(i);
+            } else {
+                outputArea.append("tree: invalid arguments\n");
+                return false;
+            }
+        }
+        List<String> lines = vfs.tree(path, depth);
+        if (lines == null) {
+            outputArea.append("tree: " + path + ": No such file or directory\n");
+            return false;
+        }
+        printLines(lines);
+        return true;
+    }
+
+    private boolean stat(List<String> args) {
+        if (vfs == null) {
+            outputArea.append("VFS not loaded\n");
+            return true;
+        } else if (args.size() < 2) {
+            outputArea.append("stat: missing operand\n");
+            return false;
+        }
+        List<String> lines = vfs.stat(args.get(1));
+        if (lines == null) {
+            outputArea.append("stat: cannot stat '" + args.get(1) + "': No such file or directory\n");
+            return false;
+        }
+        printLines(lines);
+        return true;
+    }
+
+    private void printLines(List<String> lines) {
+        for (String line : lines) {
+            outputArea.append(line + "\n");
+        }
+    }
 
     private List<String> parseArguments(String input) throws Exception {
         List<String> args = new ArrayList<>();
@@ -409,24 +662,13 @@ public class TerminalEmulator {
         return String.join(" ", result);
     }
 
-    private String tail(String content, int lineCount) {
-        if (content == null || content.isEmpty()) {
-            return "";
-        }
-
-        String[] lines = content.split(" ");
-        if (lines.length == 0) {
-            return "";
-        }
-
-        int startIndex = Math.max(0, lines.length - lineCount);
-        List<String> lastLines = new ArrayList<>();
-
-        for (int i = startIndex; i < lines.length; i++) {
-            lastLines.add(lines[i]);
+    // "image" или "image:/mount/point"; двоеточие диска Windows (C:\...) разделителем не считается
+    static String[] splitVfsSpec(String spec) {
+        int colon = spec.lastIndexOf(':');
+        if (colon > 1 && colon + 1 < spec.length() && spec.charAt(colon + 1) == '/') {
+            return new String[]{spec.substring(0, colon), spec.substring(colon + 1)};
         }
-
-        return String.join(" ", lastLines);
+        return new String[]{spec, null};
     }
 
     public static void main(String[] args) throws Exception {
@@ -450,14 +692,16 @@ public class TerminalEmulator {
         }else{
             arguments = Arrays.copyOf(args,args.length);
         }
-        String vfsPath = null;
+        List<String> vfsPaths = new ArrayList<>();
         String scriptPath = null;
+        boolean compress = false;
+        boolean lazy = false;
 
         for (int i = 0; i < arguments.length; i++) {
             switch (arguments[i]) {
                 case "-vfs":
                     if (i + 1 < arguments.length) {
-                        vfsPath = arguments[++i];
+                        vfsPaths.add(arguments[++i]);
                     }
                     break;
                 case "-script":
@@ -465,15 +709,22 @@ public class TerminalEmulator {
                         scriptPath = arguments[++i];
                     }
                     break;
+                case "-compress":
+                    compress = true;
+                    break;
+                case "-lazy":
+                    lazy = true;
+                    break;
             }
         }
 
-        final String finalVfsPath = vfsPath;
         final String finalScriptPath = scriptPath;
+        final boolean finalCompress = compress;
+        final boolean finalLazy = lazy;
 
         SwingUtilities.invokeLater(() -> {
             try {
-                new TerminalEmulator(finalVfsPath, finalScriptPath);
+                new TerminalEmulator(vfsPaths, finalScriptPath, finalCompress, finalLazy);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -484,10 +735,20 @@ public class TerminalEmulator {
 class VFSNode {
     String name;
     boolean isDirectory;
-    String content;
+    FileContent content;
+    // Ещё не прочитанное содержимое в отображённом в память CSV (ленивый режим)
+    LazyContent pendingContent;
     Map<String, VFSNode> children = new HashMap<>();
     VFSNode parent;
     String owner;
+    // Точка монтирования, образ которой ещё не подключён к дереву
+    Mount mount;
+    // Размер файла, уже учтённый в агрегатах предков
+    long size;
+    // Агрегаты поддерева директории (сама директория не считается)
+    long fileCount;
+    long dirCount;
+    long totalBytes;
 
     VFSNode(String name, boolean isDirectory, VFSNode parent) {
         this.name = name;
@@ -495,41 +756,529 @@ class VFSNode {
         this.parent = parent;
         this.owner = "admin";
     }
-    // Метод для получения содержимого как обычной строки (декодирует Base64 если нужно)
+    // Содержимое файла; в ленивом режиме декодируется при первом обращении
+    public synchronized FileContent getContent() {
+        if (pendingContent != null) {
+            setContent(pendingContent.load());
+        }
+        return content;
+    }
+
+    // Выгрузка содержимого в канал; ленивое поле декодируется, но в узле не остаётся
+    public synchronized void writeContentTo(WritableByteChannel out) throws IOException {
+        if (pendingContent != null) {
+            ByteBuffer data = pendingContent.decode();
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        } else if (content != null) {
+            content.writeTo(out);
+        }
+    }
+
+    public synchronized void setContent(FileContent data) {
+        content = data;
+        pendingContent = null;
+        resize(data != null ? data.length() : 0);
+    }
+
+    // Размер известен заранее, поэтому агрегаты точны ещё до декодирования
+    public synchronized void setPendingContent(LazyContent lazy) {
+        content = null;
+        pendingContent = lazy;
+        resize(lazy.decodedLength);
+    }
+
+    private void resize(long newSize) {
+        long delta = newSize - size;
+        size = newSize;
+        if (delta != 0 && parent != null) {
+            updateAggregates(parent, 0, 0, delta);
+        }
+    }
+
+    // Добавление (или замена) потомка с обновлением агрегатов всех предков
+    public void addChild(VFSNode child) {
+        child.parent = this;
+        VFSNode previous = children.put(child.name, child);
+        if (previous != null) {
+            updateAggregates(this, -previous.subtreeFiles(), -previous.subtreeDirs(), -previous.subtreeBytes());
+        }
+        updateAggregates(this, child.subtreeFiles(), child.subtreeDirs(), child.subtreeBytes());
+    }
+
+    public VFSNode removeChild(String childName) {
+        VFSNode removed = children.remove(childName);
+        if (removed != null) {
+            updateAggregates(this, -removed.subtreeFiles(), -removed.subtreeDirs(), -removed.subtreeBytes());
+        }
+        return removed;
+    }
+
+    // Вклад узла в агрегаты родителя
+    long subtreeFiles() {
+        return isDirectory ? fileCount : 1;
+    }
+
+    long subtreeDirs() {
+        return isDirectory ? dirCount + 1 : 0;
+    }
+
+    long subtreeBytes() {
+        return isDirectory ? totalBytes : size;
+    }
+
+    // Без блокировок: дерево меняет только один поток. Образ при загрузке строит свой поток,
+    // пока дерево никому не видно, а подключённое дерево меняется только в потоке Swing.
+    // Фоновые потоки export лишь читают содержимое. Ленивое декодирование в getContent
+    // размер не меняет, он известен точно с момента загрузки.
+    private static void updateAggregates(VFSNode from, long files, long dirs, long bytes) {
+        for (VFSNode node = from; node != null; node = node.parent) {
+            node.fileCount += files;
+            node.dirCount += dirs;
+            node.totalBytes += bytes;
+        }
+    }
+
+    // Метод для получения содержимого как обычной строки
     public String getContentAsString() {
-        if (content == null || content.isEmpty()) return "";
+        FileContent data = getContent();
+        return data != null ? data.asString() : "";
+    }
 
+    // Размер в байтах (после декодирования Base64), для директории - всего поддерева
+    public long getSize() {
+        return subtreeBytes();
+    }
+}
+
+// Ссылка на поле content внутри отображённого в память CSV
+// Файл, отображённый в память сегментами по 1 ГБ: одно отображение не может превышать 2 ГБ
+class MappedFile {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+    final long size;
+
+    MappedFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1, size - position));
+            }
+        }
+    }
+
+    byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    // Сегмент, в котором лежит позиция, и начало этого сегмента в файле - для быстрых циклов
+    ByteBuffer segment(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)];
+    }
+
+    static long segmentStart(long position) {
+        return position & ~SEGMENT_MASK;
+    }
+
+    // Позиция первого \n или \r начиная с from, либо size
+    long indexOfLineEnd(long from) {
+        while (from < size) {
+            ByteBuffer segment = segment(from);
+            long base = segmentStart(from);
+            int limit = segment.limit();
+            for (int i = (int) (from - base); i < limit; i++) {
+                byte c = segment.get(i);
+                if (c == '\n' || c == '\r') return base + i;
+            }
+            from = base + limit;
+        }
+        return size;
+    }
+
+    void get(long position, byte[] target) {
+        int done = 0;
+        while (done < target.length) {
+            ByteBuffer segment = segments[(int) ((position + done) >>> SEGMENT_SHIFT)];
+            int from = (int) ((position + done) & SEGMENT_MASK);
+            int n = Math.min(segment.limit() - from, target.length - done);
+            segment.get(from, target, done, n);
+            done += n;
+        }
+    }
+
+    // Диапазон без копирования, если он лежит в одном сегменте, иначе копия в куче
+    ByteBuffer slice(long position, int length) {
+        int from = (int) (position & SEGMENT_MASK);
+        ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+        if (from + (long) length <= segment.limit()) {
+            return segment.slice(from, length);
+        }
+        byte[] copy = new byte[length];
+        get(position, copy);
+        return ByteBuffer.wrap(copy);
+    }
+}
+
+class LazyContent {
+    private final MappedFile csv;
+    private final long offset;
+    private final int length;
+    // Точная длина содержимого после декодирования, посчитанная при разборе строки CSV
+    final long decodedLength;
+    private final boolean compress;
+
+    LazyContent(MappedFile csv, long offset, int length, long decodedLength, boolean compress) {
+        this.csv = csv;
+        this.offset = offset;
+        this.length = length;
+        this.decodedLength = decodedLength;
+        this.compress = compress;
+    }
+
+    FileContent load() {
+        return FileContent.of(decode(), FileContent.DEFAULT_CHARSET, compress);
+    }
+
+    // Декодированные байты поля без сохранения в узле
+    ByteBuffer decode() {
+        ByteBuffer field = csv.slice(offset, length);
+        for (int i = 0; i < length; i++) {
+            if (field.get(i) == '"') {
+                // Поле в кавычках - разбираем так же, как при обычной загрузке
+                byte[] raw = new byte[length];
+                field.get(0, raw);
+                String text = VirtualFileSystem.unquoteField(new String(raw, FileContent.DEFAULT_CHARSET)).trim();
+                return FileContent.decodeBase64(ByteBuffer.wrap(text.getBytes(FileContent.DEFAULT_CHARSET)));
+            }
+        }
+        return FileContent.decodeBase64(field);
+    }
+
+    // Длина поля в кавычках: снимаем кавычки так же, как decode(), но не декодируем
+    static long quotedLength(MappedFile csv, long offset, int length) {
+        byte[] raw = new byte[length];
+        csv.get(offset, raw);
+        String text = VirtualFileSystem.unquoteField(new String(raw, FileContent.DEFAULT_CHARSET)).trim();
+        byte[] bytes = text.getBytes(FileContent.DEFAULT_CHARSET);
+        int digits = 0;
+        int padding = 0;
+        for (byte b : bytes) {
+            if (b == '=') {
+                padding++;
+            } else if (padding > 0 || !FileContent.isBase64Digit(b)) {
+                return bytes.length;
+            } else {
+                digits++;
+            }
+        }
+        long decoded = FileContent.base64Length(digits, padding);
+        return decoded >= 0 ? decoded : bytes.length;
+    }
+}
+
+// Содержимое файла: декодированные байты в явной кодировке, разбитые на независимые блоки.
+// Каждый блок при желании сжимается отдельно, поэтому tail и чтение диапазона
+// распаковывают только те блоки, которые затрагивают.
+class FileContent {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+    // Наибольший размер массива, а значит и текста, который можно собрать из содержимого
+    static final int MAX_TEXT_LENGTH = Integer.MAX_VALUE - 8;
+    // Окно отображения файла хоста в память, кратно BLOCK_SIZE
+    private static final long MAP_WINDOW = 1024L * BLOCK_SIZE;
+
+    final Charset charset;
+    private final long length;
+    private final byte[][] blocks;
+    // Индекс блоков: блок i покрывает байты [i * BLOCK_SIZE, min(length, (i + 1) * BLOCK_SIZE)),
+    // packed[i] - хранится ли он сжатым (несжимаемые блоки лежат как есть)
+    private final boolean[] packed;
+
+    private FileContent(Charset charset, long length) {
+        int count = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        this.charset = charset;
+        this.length = length;
+        this.blocks = new byte[count][];
+        this.packed = new boolean[count];
+    }
+
+    // Содержимое из поля CSV: Base64 декодируется, иначе строка берётся как обычный текст
+    static FileContent fromBase64(String encoded, boolean compress) {
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            data = encoded.getBytes(DEFAULT_CHARSET);
+        }
+        return of(ByteBuffer.wrap(data), DEFAULT_CHARSET, compress);
+    }
+
+    // То же для поля, лежащего в буфере: Base64 декодируется без промежуточной строки
+    static ByteBuffer decodeBase64(ByteBuffer encoded) {
         try {
-            byte[] decodedBytes = Base64.getDecoder().decode(content);
-            return new String(decodedBytes);
+            return Base64.getDecoder().decode(encoded.duplicate());
         } catch (IllegalArgumentException e) {
-            return content;
+            return encoded.duplicate();
         }
     }
 
-    // Метод для получения исходного содержимого (Base64)
-    public String getRawContent() {
-        return content != null ? content : "";
+    private static final boolean[] BASE64_DIGITS = new boolean[256];
+    static {
+        for (char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray()) {
+            BASE64_DIGITS[c] = true;
+        }
+    }
+
+    static boolean isBase64Digit(byte b) {
+        return BASE64_DIGITS[b & 0xFF];
+    }
+
+    // Размер после декодирования digits символов Base64 и padding знаков '=' по правилам
+    // Base64.getDecoder(); -1, если такой вход декодер отвергнет
+    static long base64Length(long digits, int padding) {
+        int tail = (int) (digits % 4);
+        if (tail == 1 || padding > 2
+                || (padding == 1 && tail != 3) || (padding == 2 && tail != 2)) {
+            return -1;
+        }
+        return digits / 4 * 3 + (tail == 0 ? 0 : tail - 1);
     }
 
-    // Метод для проверки, является ли содержимое Base64
-    public boolean isBase64Content() {
-        if (content == null || content.isEmpty()) return false;
+    // Нарезает буфер на блоки, не копируя его целиком
+    static FileContent of(ByteBuffer data, Charset charset, boolean compress) {
+        FileContent content = new FileContent(charset, data.remaining());
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            content.fill(0, data, deflater);
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+        return content;
+    }
 
+    // Файл хоста отображается в память окнами и сразу режется на блоки
+    static FileContent read(FileChannel channel, Charset charset, boolean compress) throws IOException {
+        long size = channel.size();
+        FileContent content = new FileContent(charset, size);
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
         try {
-            Base64.getDecoder().decode(content);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
+            int index = 0;
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                long window = Math.min(MAP_WINDOW, size - position);
+                index = content.fill(index, channel.map(FileChannel.MapMode.READ_ONLY, position, window), deflater);
+            }
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+        return content;
+    }
+
+    // Заполняет блоки начиная с index; возвращает номер следующего блока
+    private int fill(int index, ByteBuffer source, Deflater deflater) {
+        while (source.hasRemaining()) {
+            byte[] block = new byte[Math.min(BLOCK_SIZE, source.remaining())];
+            source.get(block);
+            if (deflater != null) {
+                byte[] deflated = deflate(deflater, block);
+                if (deflated != null) {
+                    block = deflated;
+                    packed[index] = true;
+                }
+            }
+            blocks[index++] = block;
+        }
+        return index;
+    }
+
+    // Пишет содержимое в канал поблочно; несжатые блоки уходят без копирования
+    public void writeTo(WritableByteChannel out) throws IOException {
+        for (int i = 0; i < blocks.length; i++) {
+            ByteBuffer buffer = ByteBuffer.wrap(blockData(i));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    // Возвращает сжатый блок или null, если сжатие не даёт выигрыша
+    private static byte[] deflate(Deflater deflater, byte[] block) {
+        deflater.reset();
+        deflater.setInput(block);
+        deflater.finish();
+        byte[] out = new byte[block.length];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == out.length) return null;
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        return size < block.length ? Arrays.copyOf(out, size) : null;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    // Распаковывает один блок; несжатый блок возвращается как есть, без копирования
+    private byte[] blockData(int index) {
+        if (!packed[index]) return blocks[index];
+
+        int size = (int) Math.min(BLOCK_SIZE, length - (long) index * BLOCK_SIZE);
+        byte[] out = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blocks[index]);
+            int done = 0;
+            while (done < size) {
+                int n = inflater.inflate(out, done, size - done);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) break;
+                done += n;
+            }
+            if (done != size) throw new IllegalStateException("Corrupted content block " + index);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted content block " + index, e);
+        } finally {
+            inflater.end();
         }
+        return out;
+    }
+
+    // Чтение диапазона байт: распаковываются только затронутые блоки
+    public byte[] read(long offset, int count) {
+        if (offset < 0 || count < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + count + " outside of " + length);
+        }
+        byte[] out = new byte[count];
+        int written = 0;
+        while (written < count) {
+            long position = offset + written;
+            int index = (int) (position / BLOCK_SIZE);
+            int from = (int) (position % BLOCK_SIZE);
+            byte[] block = blockData(index);
+            int n = Math.min(block.length - from, count - written);
+            System.arraycopy(block, from, out, written, n);
+            written += n;
+        }
+        return out;
+    }
+
+    public String asString() {
+        if (length == 0) return "";
+        checkTextLength(length);
+        return new String(read(0, (int) length), charset);
+    }
+
+    private static void checkTextLength(long size) {
+        if (size > MAX_TEXT_LENGTH) {
+            throw new IllegalStateException("File is too large to read as text: " + size + " bytes");
+        }
+    }
+
+    // Последние count элементов, разделённых separator (как split + join, хвостовые разделители
+    // отбрасываются). Блоки просматриваются с конца, пока не найдено нужное число разделителей.
+    // Поиск идёт по байтам: в UTF-8 ASCII-разделитель не встречается внутри многобайтовых символов.
+    public String tail(int count, byte separator) {
+        if (count <= 0 || length == 0) return "";
+
+        Deque<byte[]> touched = new ArrayDeque<>();
+        long end = -1;
+        long start = 0;
+        int found = 0;
+        scan:
+        for (int index = blocks.length - 1; index >= 0; index--) {
+            // Всё, что правее этого блока, уже вошло в результат
+            if (end >= 0) checkTextLength(end - (long) (index + 1) * BLOCK_SIZE);
+            byte[] block = blockData(index);
+            touched.addFirst(block);
+            long base = (long) index * BLOCK_SIZE;
+            for (int i = block.length - 1; i >= 0; i--) {
+                if (block[i] != separator) {
+                    if (end < 0) end = base + i + 1;
+                } else if (end >= 0 && ++found == count) {
+                    start = base + i + 1;
+                    break scan;
+                }
+            }
+        }
+        if (end < 0) return "";
+        checkTextLength(end - start);
+
+        // Собираем результат из уже распакованных блоков
+        byte[] out = new byte[(int) (end - start)];
+        long base = (long) (blocks.length - touched.size()) * BLOCK_SIZE;
+        for (byte[] block : touched) {
+            long from = Math.max(start, base);
+            long to = Math.min(end, base + block.length);
+            if (from < to) {
+                System.arraycopy(block, (int) (from - base), out, (int) (from - start), (int) (to - from));
+            }
+            base += block.length;
+        }
+        return new String(out, charset);
+    }
+}
+
+// Образ VFS, смонтированный в директорию основного дерева
+class Mount {
+    final String image;
+    final String mountPoint;
+    // Узел, который лежал в точке монтирования до mount и вернётся после umount
+    VFSNode covered;
+    // Директории, созданные ради точки монтирования; после umount удаляются, если пусты
+    final List<VFSNode> createdDirs = new ArrayList<>();
+    // Заглушка в дереве до подключения образа
+    VFSNode placeholder;
+    // Корень загруженного образа после подключения
+    VFSNode attached;
+    // Фоновая загрузка; null - образ грузится при первом входе в точку монтирования
+    CompletableFuture<VFSNode> loading;
+
+    Mount(String image, String mountPoint) {
+        this.image = image;
+        this.mountPoint = mountPoint;
+    }
+
+    public String getState() {
+        if (attached != null) return "mounted";
+        if (loading != null && loading.isCompletedExceptionally()) return "failed";
+        if (loading != null && loading.isDone()) return "loaded";
+        return loading != null ? "loading" : "pending";
     }
 }
 
 class VirtualFileSystem {
+    // Фоновые потоки для загрузки образов и для import/export
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "vfs-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     VFSNode root = new VFSNode("", true,null);
     VFSNode currentDir = root;
+    // Хранить содержимое файлов сжатым поблочно
+    boolean compressContent;
+    // Загружать только структуру, содержимое читать из CSV по требованию
+    boolean lazyContent;
+
+    // Точки монтирования по абсолютному пути
+    private final Map<String, Mount> mounts = new LinkedHashMap<>();
+
+    VirtualFileSystem(boolean compressContent, boolean lazyContent) {
+        this.compressContent = compressContent;
+        this.lazyContent = lazyContent;
+    }
 
     public void loadFromCSV(String csvPath) throws Exception {
+        if (lazyContent) {
+            loadStructureFromCSV(csvPath);
+            return;
+        }
         List<String> lines = Files.readAllLines(Paths.get(csvPath));
         for (String line : lines) {
             if (line.trim().isEmpty() || line.startsWith("#")) continue;
@@ -541,37 +1290,156 @@ class VirtualFileSystem {
             String path = parts.get(1).trim();
             String content = parts.size() > 2 ? parts.get(2).trim() : "";
 
-
-            if (!path.startsWith("/")) {
-                throw new Exception("Paths must be absolute (start with /)");
+            VFSNode file = addEntry(type, path);
+            if (file != null) {
+                file.setContent(FileContent.fromBase64(content, compressContent));
             }
+        }
+    }
 
-            String[] components = path.substring(1).split("/");
-            VFSNode current = root;
+    // Ленивая загрузка: CSV отображается в память, в куче строится только дерево,
+    // а узлы файлов запоминают смещение и длину своего поля content
+    private void loadStructureFromCSV(String csvPath) throws Exception {
+        MappedFile csv = new MappedFile(Paths.get(csvPath));
+
+        // Концы строк как у Files.readAllLines: \n, \r\n или одиночный \r
+        long limit = csv.size;
+        long lineStart = 0;
+        while (lineStart < limit) {
+            long lineEnd = csv.indexOfLineEnd(lineStart);
+            long next = lineEnd + 1;
+            if (lineEnd < limit && csv.get(lineEnd) == '\r' && next < limit && csv.get(next) == '\n') next++;
+
+            loadStructureLine(csv, lineStart, lineEnd);
+            lineStart = next;
+        }
+    }
 
-            // Создаём вложенные папки
-            for (int i = 0; i < components.length - 1; i++) {
-                String component = components[i];
-                if (!current.children.containsKey(component)) {
-                    current.children.put(component, new VFSNode(component, true, current));
-                }
-                current = current.children.get(component);
-            }
-
-            // Создаём файл или конечную папку
-            String lastName = components[components.length - 1];
-            if ("file".equals(type)) {
-                VFSNode file = new VFSNode(lastName, false, current);
-                file.content = content;
-                current.children.put(lastName, file);
-            } else if ("dir".equals(type)) {
-                if (!current.children.containsKey(lastName)) {
-                    current.children.put(lastName, new VFSNode(lastName, true, current));
+    private void loadStructureLine(MappedFile csv, long start, long end) throws Exception {
+        if (start == end || csv.get(start) == '#') return;
+
+        // Границы первых трёх полей; разделитель ; внутри кавычек не считается.
+        // Попутно по полю content считается его длина после декодирования Base64
+        long[] bounds = new long[4];
+        int fields = 0;
+        bounds[0] = start;
+        boolean inQuotes = false;
+        long i = start;
+        for (; i < end && fields < 2; i++) {
+            byte c = csv.get(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ';' && !inQuotes) {
+                bounds[++fields] = i + 1;
+            }
+        }
+
+        boolean quoted = false;
+        boolean base64 = true;
+        boolean gap = false;
+        long digits = 0;
+        int padding = 0;
+        // Поле content может быть огромным, поэтому цикл идёт по сегментам с int-индексами
+        while (i < end && fields < 3) {
+            ByteBuffer segment = csv.segment(i);
+            long base = MappedFile.segmentStart(i);
+            int stop = (int) Math.min(segment.limit(), end - base);
+            int j = (int) (i - base);
+            for (; j < stop && fields < 3; j++) {
+                byte c = segment.get(j);
+                if (FileContent.isBase64Digit(c)) {
+                    if (padding > 0 || gap) base64 = false;
+                    digits++;
+                } else if (c == ';' && !inQuotes) {
+                    bounds[++fields] = base + j + 1;
+                } else if (c == '"') {
+                    inQuotes = !inQuotes;
+                    quoted = true;
+                } else if (c == '=') {
+                    if (gap) base64 = false;
+                    padding++;
+                } else if ((c & 0xFF) <= ' ') {
+                    // Пробелы по краям поля отрезаются, а внутри делают его не-Base64
+                    if (digits + padding > 0) gap = true;
+                } else {
+                    base64 = false;
                 }
             }
+            i = base + j;
+        }
+        if (fields < 2) {
+            if (decodeRange(csv, start, end).trim().isEmpty()) return;
+            throw new Exception("Invalid CSV format, expected at least 3 columns");
+        }
+        if (fields == 2) bounds[3] = end + 1;
+
+        String type = unquoteField(decodeRange(csv, bounds[0], bounds[1] - 1)).trim();
+        String path = unquoteField(decodeRange(csv, bounds[1], bounds[2] - 1)).trim();
+
+        VFSNode file = addEntry(type, path);
+        if (file != null) {
+            long from = bounds[2];
+            long to = bounds[3] - 1;
+            while (from < to && (csv.get(from) & 0xFF) <= ' ') from++;
+            while (to > from && (csv.get(to - 1) & 0xFF) <= ' ') to--;
+            if (to - from > FileContent.MAX_TEXT_LENGTH) {
+                throw new Exception("Content of " + path + " is too large: " + (to - from) + " bytes");
+            }
+            int length = (int) (to - from);
+            long decoded = base64 ? FileContent.base64Length(digits, padding) : -1;
+            long size = quoted ? LazyContent.quotedLength(csv, from, length) : decoded >= 0 ? decoded : length;
+            file.setPendingContent(new LazyContent(csv, from, length, size, compressContent));
         }
     }
-    private List<String> parseCSVLine(String line) {
+
+    private static String decodeRange(MappedFile csv, long start, long end) throws Exception {
+        if (end - start > FileContent.MAX_TEXT_LENGTH) {
+            throw new Exception("CSV field is too large: " + (end - start) + " bytes");
+        }
+        byte[] bytes = new byte[(int) (end - start)];
+        csv.get(start, bytes);
+        return new String(bytes, FileContent.DEFAULT_CHARSET);
+    }
+
+    // Убирает CSV-кавычки у одного поля
+    static String unquoteField(String field) {
+        if (field.indexOf('"') < 0) return field;
+        return parseCSVLine(field).get(0);
+    }
+
+    // Добавляет в дерево запись из CSV; для файла возвращает созданный узел
+    private VFSNode addEntry(String type, String path) throws Exception {
+        if (!path.startsWith("/")) {
+            throw new Exception("Paths must be absolute (start with /)");
+        }
+
+        String[] components = path.substring(1).split("/");
+        VFSNode current = root;
+
+        // Создаём вложенные папки
+        for (int i = 0; i < components.length - 1; i++) {
+            String component = components[i];
+            if (!current.children.containsKey(component)) {
+                current.addChild(new VFSNode(component, true, current));
+            }
+            current = current.children.get(component);
+        }
+
+        // Создаём файл или конечную папку
+        String lastName = components[components.length - 1];
+        if ("file".equals(type)) {
+            VFSNode file = new VFSNode(lastName, false, current);
+            current.addChild(file);
+            return file;
+        } else if ("dir".equals(type)) {
+            if (!current.children.containsKey(lastName)) {
+                current.addChild(new VFSNode(lastName, true, current));
+            }
+        }
+        return null;
+    }
+
+    private static List<String> parseCSVLine(String line) {
         List<String> result = new ArrayList<>();
         StringBuilder current = new StringBuilder();
         boolean inQuotes = false;
@@ -622,6 +1490,389 @@ class VirtualFileSystem {
         return result;
     }
 
+    // Монтирует образ в директорию. При eager образ сразу начинает грузиться в фоне,
+    // иначе - при первом входе в точку монтирования
+    public Mount mount(String image, String mountPoint, boolean eager) throws Exception {
+        String path = resolvePath(mountPoint);
+        if (path.equals("/")) {
+            throw new Exception("cannot mount over /");
+        }
+        if (mounts.containsKey(path)) {
+            throw new Exception(path + " is already a mount point");
+        }
+
+        Mount mount = new Mount(image, path);
+        VFSNode covered;
+        try {
+            covered = makeDirectories(path, mount.createdDirs);
+        } catch (Exception e) {
+            removeCreated(mount.createdDirs);
+            throw e;
+        }
+        mount.covered = covered;
+        mount.placeholder = new VFSNode(covered.name, true, covered.parent);
+        mount.placeholder.owner = covered.owner;
+        mount.placeholder.mount = mount;
+        covered.parent.addChild(mount.placeholder);
+        mounts.put(path, mount);
+
+        if (eager) {
+            mount.loading = CompletableFuture.supplyAsync(() -> loadImage(image), WORKERS);
+        }
+        return mount;
+    }
+
+    // Отдельное дерево для образа; основное дерево в потоке загрузки не трогается
+    private VFSNode loadImage(String image) {
+        try {
+            VirtualFileSystem imageFs = new VirtualFileSystem(compressContent, lazyContent);
+            imageFs.loadFromCSV(image);
+            return imageFs.root;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Подключает загруженный образ вместо заглушки, при необходимости дожидаясь загрузки
+    public VFSNode attach(Mount mount) {
+        if (mount.attached != null || mounts.get(mount.mountPoint) != mount) {
+            return mount.attached;
+        }
+        VFSNode imageRoot;
+        try {
+            imageRoot = mount.loading != null ? mount.loading.join() : loadImage(mount.image);
+        } catch (CompletionException e) {
+            unmount(mount);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("cannot mount " + mount.image + ": " + describe(cause), cause);
+        }
+        imageRoot.name = mount.placeholder.name;
+        imageRoot.owner = mount.placeholder.owner;
+        mount.placeholder.parent.addChild(imageRoot);
+        mount.attached = imageRoot;
+        mount.placeholder = null;
+        mount.loading = null;
+        return imageRoot;
+    }
+
+    public void umount(String mountPoint) throws Exception {
+        Mount mount = mounts.get(resolvePath(mountPoint));
+        if (mount == null) {
+            throw new Exception(mountPoint + ": not mounted");
+        }
+        unmount(mount);
+    }
+
+    private void unmount(Mount mount) {
+        // Сначала вложенные точки монтирования
+        for (Mount nested : new ArrayList<>(mounts.values())) {
+            if (nested.mountPoint.startsWith(mount.mountPoint + "/")) {
+                unmount(nested);
+            }
+        }
+
+        VFSNode top = mount.attached != null ? mount.attached : mount.placeholder;
+        top.parent.addChild(mount.covered);
+        removeCreated(mount.createdDirs);
+        // Текущая директория могла остаться в отключённом поддереве - поднимаемся до живого предка
+        while (!isAttached(currentDir)) {
+            currentDir = currentDir.parent;
+        }
+        if (mount.loading != null) {
+            mount.loading.cancel(false);
+        }
+        // Отпускаем ссылки на дерево образа, чтобы его память освободилась
+        mount.attached = null;
+        mount.placeholder = null;
+        mount.loading = null;
+        mounts.remove(mount.mountPoint);
+    }
+
+    public Collection<Mount> getMounts() {
+        return mounts.values();
+    }
+
+    // Копирует файл (или с recursive - директорию) хоста в VFS. Файлы читаются параллельно
+    // через FileChannel, а дерево меняется только в вызывающем потоке. Возвращает число файлов.
+    // Ссылка в самом hostPath раскрывается (как cp -H), а ссылки и специальные файлы внутри
+    // директории не раскрываются и пропускаются с сообщением в skipped.
+    public int importFromHost(String hostPath, String vfsPath, boolean recursive, List<String> skipped) throws Exception {
+        Path given = Paths.get(hostPath);
+        Path source = given.toAbsolutePath().normalize();
+        if (!Files.exists(source)) {
+            throw new Exception("cannot stat '" + hostPath + "': No such file or directory");
+        }
+        boolean sourceIsDirectory = Files.isDirectory(source);
+        if (sourceIsDirectory && !recursive) {
+            throw new Exception("-r not specified; omitting directory '" + hostPath + "'");
+        }
+
+        // Как в cp: если цель - существующая директория, копируем внутрь неё,
+        // а "dir/." сливаем с ней, как cp -r dir/. dst
+        String target = resolvePath(vfsPath);
+        VFSNode existing = getNode(target);
+        boolean contentsOnly = given.getFileName() != null && given.getFileName().toString().equals(".");
+        if (existing != null && existing.isDirectory && !contentsOnly && source.getFileName() != null) {
+            target = (target.equals("/") ? "" : target) + "/" + source.getFileName();
+        }
+
+        // План: пути директорий и файлов в VFS; дерево пока не меняется
+        List<String> dirs = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        List<String> filePaths = new ArrayList<>();
+        if (sourceIsDirectory) {
+            dirs.add(target);
+            try {
+                Path start = source.toRealPath();
+                try (Stream<Path> walk = Files.walk(start)) {
+                    for (Path path : (Iterable<Path>) walk::iterator) {
+                        if (path.equals(start)) continue;
+                        StringBuilder vfsFile = new StringBuilder(target.equals("/") ? "" : target);
+                        for (Path name : start.relativize(path)) {
+                            vfsFile.append('/').append(name);
+                        }
+                        if (Files.isSymbolicLink(path)) {
+                            skipped.add("skipping symbolic link '" + source.resolve(start.relativize(path)) + "'");
+                        } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                            dirs.add(vfsFile.toString());
+                        } else if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                            files.add(path);
+                            filePaths.add(vfsFile.toString());
+                        } else {
+                            skipped.add("skipping special file '" + source.resolve(start.relativize(path)) + "'");
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw ioError(source, e);
+            } catch (UncheckedIOException e) {
+                throw ioError(source, e.getCause());
+            }
+        } else {
+            files.add(source);
+            filePaths.add(target);
+        }
+
+        // Все конфликты с существующим деревом выявляются до изменений
+        for (String dir : dirs) {
+            checkTarget(dir, true);
+        }
+        for (String file : filePaths) {
+            checkTarget(file, false);
+        }
+
+        List<CompletableFuture<FileContent>> reads = new ArrayList<>();
+        for (Path file : files) {
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return FileContent.read(channel, FileContent.DEFAULT_CHARSET, compressContent);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, WORKERS));
+        }
+        // Дерево меняется только после того, как прочитаны все файлы
+        List<FileContent> contents = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            contents.add(join(reads.get(i), files.get(i).toString()));
+        }
+        for (String dir : dirs) {
+            makeDirectories(dir, null);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            String path = filePaths.get(i);
+            int slash = path.lastIndexOf('/');
+            VFSNode parent = makeDirectories(slash == 0 ? "/" : path.substring(0, slash), null);
+            VFSNode file = new VFSNode(path.substring(slash + 1), false, parent);
+            parent.addChild(file);
+            file.setContent(contents.get(i));
+        }
+        return files.size();
+    }
+
+    // Проверяет, что по пути можно создать директорию или файл: все предки - директории
+    // (или ещё не существуют), а на самом месте нет узла другого типа
+    private void checkTarget(String path, boolean directory) throws Exception {
+        VFSNode current = root;
+        String[] components = path.substring(1).split("/");
+        for (String component : components) {
+            if (component.equals(".") || component.equals("..")) {
+                throw new Exception("invalid name '" + component + "' in " + path);
+            }
+        }
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].isEmpty()) continue;
+
+            VFSNode next = child(current, components[i]);
+            if (next == null) return;
+            if (i < components.length - 1 && !next.isDirectory) {
+                throw new Exception("Not a directory: " + getPath(next));
+            }
+            if (i == components.length - 1 && next.isDirectory != directory) {
+                throw new Exception(directory
+                        ? "cannot overwrite non-directory '" + getPath(next) + "' with directory"
+                        : "cannot overwrite directory '" + getPath(next) + "' with a file");
+            }
+            current = next;
+        }
+    }
+
+    // Выгружает файл (или с recursive - директорию) VFS на хост; файлы пишутся параллельно
+    // напрямую из блоков через FileChannel. Возвращает число файлов.
+    public int exportToHost(String vfsPath, String hostPath, boolean recursive) throws Exception {
+        VFSNode source = getNode(resolvePath(vfsPath));
+        if (source == null) {
+            throw new Exception("cannot stat '" + vfsPath + "': No such file or directory");
+        }
+        if (source.isDirectory && !recursive) {
+            throw new Exception("-r not specified; omitting directory '" + vfsPath + "'");
+        }
+
+        Path target = Paths.get(hostPath);
+        if (Files.isDirectory(target) && !source.name.isEmpty()) {
+            target = target.resolve(source.name);
+        }
+
+        // Директории создаются заранее, файлы собираются в список для параллельной записи
+        List<VFSNode> files = new ArrayList<>();
+        List<Path> destinations = new ArrayList<>();
+        Deque<VFSNode> pendingDirs = new ArrayDeque<>();
+        Deque<Path> pendingPaths = new ArrayDeque<>();
+        if (source.isDirectory) {
+            pendingDirs.push(source);
+            pendingPaths.push(target);
+        } else {
+            files.add(source);
+            destinations.add(target);
+        }
+        while (!pendingDirs.isEmpty()) {
+            VFSNode dir = pendingDirs.pop();
+            Path path = pendingPaths.pop();
+            try {
+                Files.createDirectories(path);
+            } catch (IOException e) {
+                throw ioError(path, e);
+            }
+            for (String name : new ArrayList<>(dir.children.keySet())) {
+                VFSNode node = child(dir, name);
+                if (node.isDirectory) {
+                    pendingDirs.push(node);
+                    pendingPaths.push(path.resolve(name));
+                } else {
+                    files.add(node);
+                    destinations.add(path.resolve(name));
+                }
+            }
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            VFSNode file = files.get(i);
+            Path destination = destinations.get(i);
+            writes.add(CompletableFuture.runAsync(() -> {
+                try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    file.writeContentTo(channel);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, WORKERS));
+        }
+        for (int i = 0; i < files.size(); i++) {
+            join(writes.get(i), destinations.get(i).toString());
+        }
+        return files.size();
+    }
+
+    private static <T> T join(CompletableFuture<T> future, String path) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new Exception(path + ": " + describe(cause), cause);
+        }
+    }
+
+    // Ошибка ввода-вывода в виде "путь: причина"; путь берётся из исключения, если он там есть
+    private static Exception ioError(Path path, IOException e) {
+        String file = e instanceof FileSystemException ? ((FileSystemException) e).getFile() : null;
+        return new Exception((file != null ? file : path.toString()) + ": " + describe(e), e);
+    }
+
+    // Потомок директории; вход в точку монтирования подключает её образ
+    private VFSNode child(VFSNode dir, String name) {
+        VFSNode node = dir.children.get(name);
+        if (node != null && node.mount != null) {
+            return attach(node.mount);
+        }
+        return node;
+    }
+
+    // Абсолютный путь без ".", ".." и повторных "/"
+    public String resolvePath(String path) {
+        String full = path.startsWith("/") ? path : getCurrentPath() + "/" + path;
+        Deque<String> components = new ArrayDeque<>();
+        for (String component : full.split("/")) {
+            if (component.isEmpty() || component.equals(".")) continue;
+            if (component.equals("..")) {
+                components.pollLast();
+            } else {
+                components.addLast(component);
+            }
+        }
+        return "/" + String.join("/", components);
+    }
+
+    private boolean isAttached(VFSNode node) {
+        for (; node.parent != null; node = node.parent) {
+            if (node.parent.children.get(node.name) != node) return false;
+        }
+        return node == root;
+    }
+
+    // Удаляет созданные makeDirectories директории, начиная с самой глубокой, пока они пусты
+    private void removeCreated(List<VFSNode> created) {
+        for (int i = created.size() - 1; i >= 0; i--) {
+            VFSNode dir = created.get(i);
+            if (!dir.children.isEmpty() || dir.parent.children.get(dir.name) != dir) break;
+            dir.parent.removeChild(dir.name);
+        }
+        created.clear();
+    }
+
+    // Понятное описание причины ошибки ввода-вывода
+    static String describe(Throwable e) {
+        if (e instanceof NoSuchFileException) return "No such file";
+        if (e instanceof AccessDeniedException) return "Permission denied";
+        if (e instanceof FileAlreadyExistsException) return "File exists";
+        if (e instanceof NotDirectoryException) return "Not a directory";
+        if (e instanceof FileSystemException && ((FileSystemException) e).getReason() != null) {
+            return ((FileSystemException) e).getReason();
+        }
+        if (e instanceof IOException) return e.getClass().getSimpleName() + ": " + e.getMessage();
+        return e.getMessage();
+    }
+
+    // Создаёт недостающие директории пути (как mkdir -p) и возвращает последнюю;
+    // созданные узлы добавляются в created, если он задан
+    private VFSNode makeDirectories(String path, List<VFSNode> created) throws Exception {
+        VFSNode current = root;
+        for (String component : path.substring(1).split("/")) {
+            if (component.isEmpty()) continue;
+
+            VFSNode next = child(current, component);
+            if (next == null) {
+                next = new VFSNode(component, true, current);
+                current.addChild(next);
+                if (created != null) created.add(next);
+            } else if (!next.isDirectory) {
+                throw new Exception("Not a directory: " + getPath(next));
+            }
+            current = next;
+        }
+        return current;
+    }
+
     public boolean changeDirectory(String path) {
         if (path.equals("/")) {
             currentDir = root;
@@ -638,10 +1889,10 @@ class VirtualFileSystem {
         if (!path.startsWith("/")) {
            //System.out.println(path);
             // Относительный путь
-            if (currentDir.children.containsKey(path) &&
-                    currentDir.children.get(path).isDirectory) {
+            if (child(currentDir, path) != null &&
+                    child(currentDir, path).isDirectory) {
                 //System.out.println(path);
-                currentDir = currentDir.children.get(path);
+                currentDir = child(currentDir, path);
                 return true;
             }
             return false;
@@ -654,11 +1905,11 @@ class VirtualFileSystem {
         for (String component : components) {
             if (component.isEmpty()) continue;
 
-            if (!current.children.containsKey(component) ||
-                    !current.children.get(component).isDirectory) {
+            if (child(current, component) == null ||
+                    !child(current, component).isDirectory) {
                 return false;
             }
-            current = current.children.get(component);
+            current = child(current, component);
         }
 
         currentDir = current;
@@ -666,10 +1917,14 @@ class VirtualFileSystem {
     }
 
     public String getCurrentPath() {
-        if (currentDir == root) return "/";
+        return getPath(currentDir);
+    }
+
+    public String getPath(VFSNode target) {
+        if (target == root) return "/";
 
         List<String> pathComponents = new ArrayList<>();
-        VFSNode node = currentDir;
+        VFSNode node = target;
 
         while (node != null && node != root) {
             pathComponents.add(0, node.name);
@@ -682,8 +1937,8 @@ class VirtualFileSystem {
     public VFSNode getFile(String path) {
         if (!path.startsWith("/")) {
             // Относительный путь от текущей директории
-            if (currentDir.children.containsKey(path) && !currentDir.children.get(path).isDirectory) {
-                return currentDir.children.get(path);
+            if (child(currentDir, path) != null && !child(currentDir, path).isDirectory) {
+                return child(currentDir, path);
             }
             return null;
         }
@@ -696,11 +1951,11 @@ class VirtualFileSystem {
             String component = components[i];
             if (component.isEmpty()) continue;
 
-            if (!current.children.containsKey(component)) {
+            if (child(current, component) == null) {
                 return null;
             }
 
-            VFSNode next = current.children.get(component);
+            VFSNode next = child(current, component);
             if (i == components.length - 1) {
                 return next.isDirectory ? null : next;
             } else {
@@ -722,6 +1977,16 @@ class VirtualFileSystem {
         return file.getContentAsString();
     }
 
+    // Хвост файла без распаковки всего содержимого
+    public String readFileTail(String path, int count) {
+        VFSNode file = getFile(path);
+        if (file == null) {
+            return null;
+        }
+        FileContent data = file.getContent();
+        return data != null ? data.tail(count, (byte) ' ') : "";
+    }
+
     public boolean changeOwner(String path, String newOwner) {
         VFSNode node = getNode(path); // нужен метод, возвращающий узел по пути (файл или директорию)
         if (node == null) {
@@ -737,8 +2002,8 @@ class VirtualFileSystem {
 
         if (!path.startsWith("/")) {
             // Относительный путь
-            if (currentDir.children.containsKey(path)) {
-                return currentDir.children.get(path);
+            if (child(currentDir, path) != null) {
+                return child(currentDir, path);
             }
             return null;
         }
@@ -750,14 +2015,95 @@ class VirtualFileSystem {
         for (String component : components) {
             if (component.isEmpty()) continue;
 
-            if (!current.children.containsKey(component)) {
+            if (child(current, component) == null) {
                 return null;
             }
-            current = current.children.get(component);
+            current = child(current, component);
         }
 
         return current;
     }
+
+    // Узел по пути с "." и ".." (относительно текущей директории); пустой путь - текущая директория
+    private VFSNode getNodeOrCurrent(String path) {
+        return path == null ? currentDir : getNode(resolvePath(path));
+    }
+
+    // du: размеры берутся из агрегатов, содержимое файлов не читается
+    public List<String> diskUsage(String path, boolean summarize) {
+        VFSNode node = getNodeOrCurrent(path);
+        if (node == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        if (!summarize && node.isDirectory) {
+            appendDiskUsage(node, result);
+        } else {
+            result.add(node.getSize() + "\t" + getPath(node));
+        }
+        return result;
+    }
+
+    private void appendDiskUsage(VFSNode dir, List<String> result) {
+        for (VFSNode child : sortedChildren(dir)) {
+            if (child.isDirectory) {
+                appendDiskUsage(child, result);
+            }
+        }
+        result.add(dir.getSize() + "\t" + getPath(dir));
+    }
+
+    // tree: обход ограничен глубиной maxDepth, итоговые счётчики берутся из агрегатов
+    public List<String> tree(String path, int maxDepth) {
+        VFSNode node = getNodeOrCurrent(path);
+        if (node == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        result.add(path == null ? "." : path);
+        if (node.isDirectory) {
+            appendTree(node, "", 1, maxDepth, result);
+        }
+        result.add("");
+        result.add(node.dirCount + " directories, " + node.subtreeFiles() + " files");
+        return result;
+    }
+
+    private void appendTree(VFSNode dir, String prefix, int depth, int maxDepth, List<String> result) {
+        if (depth > maxDepth) return;
+        List<VFSNode> children = sortedChildren(dir);
+        for (int i = 0; i < children.size(); i++) {
+            VFSNode child = children.get(i);
+            boolean last = i == children.size() - 1;
+            result.add(prefix + (last ? "└── " : "├── ") + child.name);
+            if (child.isDirectory) {
+                appendTree(child, prefix + (last ? "    " : "│   "), depth + 1, maxDepth, result);
+            }
+        }
+    }
+
+    public List<String> stat(String path) {
+        VFSNode node = getNodeOrCurrent(path);
+        if (node == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        result.add("  File: " + getPath(node));
+        result.add("  Type: " + (node.isDirectory ? "directory" : "regular file"));
+        result.add("  Size: " + node.getSize());
+        result.add(" Owner: " + node.owner);
+        if (node.isDirectory) {
+            result.add(" Files: " + node.fileCount);
+            result.add("  Dirs: " + node.dirCount);
+        }
+        return result;
+    }
+
+    private List<VFSNode> sortedChildren(VFSNode dir) {
+        List<VFSNode> children = new ArrayList<>(dir.children.values());
+        children.sort(Comparator.comparing(node -> node.name));
+        return children;
+    }
 }
 
 